@@ -1,6 +1,7 @@
 package network;
 
 import network.util.AppProperties;
+import network.util.ConfigWatcher;
 
 import java.io.IOException;
 import java.sql.SQLException;
@@ -9,8 +10,8 @@ import static network.util.Logger.log;
 
 public class Application {
     public static void main(String[] args) throws IOException, SQLException {
-        AppProperties properties = new AppProperties();
-        String serverType = properties.getServerType();
+        String serverType = AppProperties.get().getServerType();
+        new ConfigWatcher().start();    // Tunables are reloaded without a restart.
         log(" Server starting...");
         if (serverType.equals("persist socket server")) new PersistSocketServer().run();
         else if (serverType.equals("selector server")) new SelectorServer().start();
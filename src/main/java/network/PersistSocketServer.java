@@ -1,5 +1,6 @@
 package network;
 
+import network.relay.PeerRelay;
 import network.util.AppProperties;
 import network.util.Watchdog;
 import postgresJDBC.Client;
@@ -14,8 +15,9 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 
 import static network.util.Logger.log;
@@ -28,13 +30,17 @@ import static network.util.Logger.log;
  * login, password hash, password salt, session key (not implemented).
  *
  * Sends the last 20 messages from the server to each new connection.
+ *
+ * If the relay port is configured, broadcasts are shared with other
+ * server instances through {@link PeerRelay}.
  */
 public class PersistSocketServer implements Runnable {
     // Array of all connected sockets.
-    private static final ArrayList<EchoProtocol> clientBase = new ArrayList<>();
-    AppProperties properties = new AppProperties();
+    private static final List<EchoProtocol> clientBase = new CopyOnWriteArrayList<>();
+    AppProperties properties = AppProperties.get();
     Connection connection = DriverManager.getConnection(properties.getUrlForSQL(), properties.getSQLUsername(), properties.getSQLPass());
     ClientDAO clientDAO = new ClientDAO(connection);
+    private PeerRelay relay;
 
     public PersistSocketServer() throws IOException, SQLException {
     }
@@ -43,6 +49,7 @@ public class PersistSocketServer implements Runnable {
     public void run() {
         var pool = Executors.newCachedThreadPool();
         try (var serverSocket = new ServerSocket()) {
+            startRelay();
             serverSocket.bind(new InetSocketAddress(properties.getHostname(), properties.getPort()));
             while (true) {
                 var clientSocket = serverSocket.accept();
@@ -56,6 +63,22 @@ public class PersistSocketServer implements Runnable {
         }
     }
 
+    private void startRelay() throws IOException {
+        Integer relayPort = properties.getRelayPort();
+        if (relayPort == null) return;
+        relay = new PeerRelay(properties.getNodeId(), properties.getHostname(), relayPort,
+                properties.getRelayPeers(), () -> AppProperties.get().getRelayMaxBatch(),
+                () -> AppProperties.get().getRelayReconnectDelay(), PersistSocketServer::deliver);
+        relay.start();
+    }
+
+    // Message from another server instance, it is already stored in the database by its origin.
+    private static void deliver(String text) {
+        for (EchoProtocol client : clientBase) {
+            client.send(text);
+        }
+    }
+
     /**
      * Class for working with a new connection (socket).
      */
@@ -186,6 +209,7 @@ public class PersistSocketServer implements Runnable {
                     client.send(text);
                 }
                 clientDAO.writeMsg(text);
+                if (relay != null) relay.publish(text);
             } catch (Exception e) {
                 System.out.println(e);
             }
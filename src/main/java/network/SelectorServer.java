@@ -1,5 +1,6 @@
 package network;
 
+import network.relay.PeerRelay;
 import network.util.AppProperties;
 
 import java.io.IOException;
@@ -12,6 +13,7 @@ import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static network.util.Logger.log;
 
@@ -20,14 +22,20 @@ import static network.util.Logger.log;
  * Java nio.
  *
  * Communication with the database is not implemented.
+ *
+ * If the relay port is configured, broadcasts are shared with other
+ * server instances through {@link PeerRelay}.
  */
 public class SelectorServer {
     private Selector selector;
-    AppProperties properties = new AppProperties();
+    AppProperties properties = AppProperties.get();
     // Array of all connected channels.
     private final ArrayList<SocketChannel> clientBase = new ArrayList<>();
     // <channel, array of client messages>
     private final Map<SocketChannel, LinkedList<String>> pendingData = new HashMap<>();
+    // Messages from other server instances, filled by the relay threads.
+    private final Queue<String> relayedData = new ConcurrentLinkedQueue<>();
+    private PeerRelay relay;
 
     public SelectorServer() throws IOException {
     }
@@ -39,10 +47,15 @@ public class SelectorServer {
         serverSocketChannel.bind(new InetSocketAddress(properties.getHostname(), properties.getPort()));
         serverSocketChannel.configureBlocking(false);
         serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+        startRelay();
 
         while (true) {
             // Waiting for events on channels.
             selector.select();
+            String relayed;
+            while ((relayed = relayedData.poll()) != null) {
+                writeAll(relayed);
+            }
             Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
             while (keys.hasNext()) {
                 SelectionKey key = keys.next();
@@ -72,6 +85,30 @@ public class SelectorServer {
         log("connected " + channel.socket().getRemoteSocketAddress());
     }
 
+    private void startRelay() throws IOException {
+        Integer relayPort = properties.getRelayPort();
+        if (relayPort == null) return;
+        relay = new PeerRelay(properties.getNodeId(), properties.getHostname(), relayPort,
+                properties.getRelayPeers(), () -> AppProperties.get().getRelayMaxBatch(),
+                () -> AppProperties.get().getRelayReconnectDelay(), text -> {
+                    relayedData.add(text);
+                    selector.wakeup();
+                });
+        relay.start();
+    }
+
+    private void writeAll(String text) {
+        ByteBuffer byteBuffer = ByteBuffer.wrap((text + "\n").getBytes(StandardCharsets.UTF_8));
+        clientBase.forEach(socketChannel -> {
+            try {
+                socketChannel.write(byteBuffer);
+                byteBuffer.flip();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
     /**
      * Class for working with a new connection (channel).
      */
@@ -84,7 +121,7 @@ public class SelectorServer {
 
         private void read(SelectionKey key) throws IOException {
             channel = (SocketChannel) key.channel();
-            ByteBuffer byteBuffer = ByteBuffer.allocate(1024);
+            ByteBuffer byteBuffer = ByteBuffer.allocate(AppProperties.get().getReadBufferSize());
             int numRead = channel.read(byteBuffer);
             if (numRead == -1) {   // If client is disconnected.
                 removeClient(key);
@@ -140,19 +177,9 @@ public class SelectorServer {
         }
 
         private void sendAll(String msg, String clientName) {
-            ByteBuffer byteBuffer = ByteBuffer.allocate(1024);
-            byteBuffer.clear();
-            String serverMsg = msg + " | from <" + clientName + "> " + formatter.format(date) + "\n";
-            byteBuffer.put(serverMsg.getBytes(StandardCharsets.UTF_8));
-            byteBuffer.flip();
-            clientBase.forEach(socketChannel -> {
-                try {
-                    socketChannel.write(byteBuffer);
-                    byteBuffer.flip();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            });
+            String serverMsg = msg + " | from <" + clientName + "> " + formatter.format(date);
+            writeAll(serverMsg);
+            if (relay != null) relay.publish(serverMsg);
         }
     }
 }
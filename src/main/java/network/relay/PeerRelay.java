@@ -0,0 +1,263 @@
+package network.relay;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+import static network.util.Logger.log;
+
+/**
+ * Relay of chat broadcasts between several server instances.
+ *
+ * Every locally originated broadcast is forwarded to all configured peers.
+ * Messages received from peers are only delivered to local clients
+ * and never forwarded further, so the peers must form a full mesh.
+ *
+ * Link protocol (one TCP connection per peer, one direction):
+ * `count (int) { origin (UTF) epoch (long) sequence (long) length (int) text (bytes) } * count`
+ *
+ * The origin id suppresses loops, the sequence number drops
+ * duplicates and stale messages after a link reconnect.
+ * The epoch is a random id of the origin process run: only one process
+ * per node id is alive, so a new epoch means a restarted peer with
+ * a new sequence, which must not be ignored.
+ *
+ * Only connections from the addresses of the configured peers are accepted.
+ */
+public class PeerRelay {
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int MAX_MESSAGE_LENGTH = 64 * 1024;
+
+    private final String nodeId;
+    private final String hostname;
+    private final int port;
+    private final List<PeerLink> peers = new ArrayList<>();
+    private final IntSupplier maxBatch;
+    private final LongSupplier reconnectDelay;
+    private final Consumer<String> delivery;
+    private final long epoch = UUID.randomUUID().getMostSignificantBits();
+    private long sequence;
+    // <origin node id, {epoch, last delivered sequence number}>
+    private final Map<String, long[]> lastSeen = new HashMap<>();
+    // Accepted incoming links, closed together with the relay.
+    private final List<Socket> incoming = new CopyOnWriteArrayList<>();
+    private ServerSocket serverSocket;
+
+    /**
+     * @param peers          relay addresses of other instances
+     * @param maxBatch       maximum number of messages sent to a peer in one batch, read before each batch
+     * @param reconnectDelay pause before reconnecting a broken link in ms, read before each pause
+     * @param delivery       receives the text of every message relayed by a peer
+     */
+    public PeerRelay(String nodeId, String hostname, int port, List<InetSocketAddress> peers,
+                     IntSupplier maxBatch, LongSupplier reconnectDelay, Consumer<String> delivery) {
+        this.nodeId = nodeId;
+        this.hostname = hostname;
+        this.port = port;
+        this.maxBatch = maxBatch;
+        this.reconnectDelay = reconnectDelay;
+        this.delivery = delivery;
+        for (InetSocketAddress peer : peers) {
+            this.peers.add(new PeerLink(peer.getHostString(), peer.getPort()));
+        }
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(hostname, port));
+        Thread acceptor = new Thread(() -> acceptPeers(serverSocket), "relay-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        for (PeerLink peer : peers) {
+            peer.setDaemon(true);
+            peer.start();
+        }
+        log(" Relay " + nodeId + " listening on " + hostname + ":" + port + ", peers: " + peers.size());
+    }
+
+    /**
+     * Queues a locally originated message for all peers.
+     * Synchronized so that the queues receive messages in sequence order,
+     * otherwise the receiver would drop a message overtaken by a later one.
+     */
+    public synchronized void publish(String text) {
+        RelayMessage message = new RelayMessage(nodeId, epoch, ++sequence, text);
+        if (message.data.length > MAX_MESSAGE_LENGTH) {
+            log("relay message of " + message.data.length + " bytes is too long, message dropped");
+            return;
+        }
+        for (PeerLink peer : peers) {
+            if (!peer.queue.offer(message)) log("relay queue to " + peer + " is full, message dropped");
+        }
+    }
+
+    /**
+     * Stops the links to the peers and closes the relay port.
+     */
+    public void close() throws IOException {
+        for (PeerLink peer : peers) {
+            peer.interrupt();
+        }
+        for (Socket socket : incoming) {
+            socket.close();
+        }
+        if (serverSocket != null) serverSocket.close();
+    }
+
+    private void acceptPeers(ServerSocket serverSocket) {
+        try (serverSocket) {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                if (!isPeer(socket.getInetAddress())) {
+                    log("relay connection rejected " + socket);
+                    socket.close();
+                    continue;
+                }
+                log("relay peer connected " + socket);
+                incoming.add(socket);
+                Thread reader = new Thread(() -> receive(socket), "relay-read");
+                reader.setDaemon(true);
+                reader.start();
+            }
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) e.printStackTrace();
+        }
+    }
+
+    // Peer host names are resolved on every connection, their addresses may change.
+    private boolean isPeer(InetAddress address) {
+        for (PeerLink peer : peers) {
+            try {
+                for (InetAddress peerAddress : InetAddress.getAllByName(peer.host)) {
+                    if (peerAddress.equals(address)) return true;
+                }
+            } catch (IOException e) {
+                log("relay peer " + peer + " not resolved: " + e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    private void receive(Socket socket) {
+        try (socket; var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (true) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String origin = in.readUTF();
+                    long originEpoch = in.readLong();
+                    long seq = in.readLong();
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_MESSAGE_LENGTH) {
+                        log("relay message of " + length + " bytes from " + socket + ", link closed");
+                        return;
+                    }
+                    byte[] data = new byte[length];
+                    in.readFully(data);
+                    if (isFresh(origin, originEpoch, seq)) delivery.accept(new String(data, StandardCharsets.UTF_8));
+                }
+            }
+        } catch (EOFException e) {
+            log("relay peer disconnected " + socket);
+        } catch (IOException e) {
+            if (!socket.isClosed()) e.printStackTrace();
+        } finally {
+            incoming.remove(socket);
+        }
+    }
+
+    // Drops own messages that came back, anything already delivered
+    // and messages from an earlier run of the origin.
+    private synchronized boolean isFresh(String origin, long originEpoch, long seq) {
+        if (origin.equals(nodeId)) return false;
+        long[] last = lastSeen.get(origin);
+        if (last != null && originEpoch == last[0] && seq <= last[1]) return false;
+        lastSeen.put(origin, new long[]{originEpoch, seq});
+        return true;
+    }
+
+    private static class RelayMessage {
+        private final String origin;
+        private final long epoch;
+        private final long seq;
+        private final byte[] data;
+
+        private RelayMessage(String origin, long epoch, long seq, String text) {
+            this.origin = origin;
+            this.epoch = epoch;
+            this.seq = seq;
+            this.data = text.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Outgoing link to a single peer.
+     * Sends everything that has accumulated in the queue as one batch and one flush.
+     */
+    private class PeerLink extends Thread {
+        private final String host;
+        private final int port;
+        private final BlockingQueue<RelayMessage> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        private PeerLink(String host, int port) {
+            super("relay-" + host + ":" + port);
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public void run() {
+            List<RelayMessage> batch = new ArrayList<>();
+            while (true) {
+                try (var socket = new Socket(host, port);
+                     var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+                    log("relay connected to " + this);
+                    while (true) {
+                        // A batch left over from a broken link is resent, the receiver drops duplicates.
+                        if (batch.isEmpty()) {
+                            batch.add(queue.take());
+                            queue.drainTo(batch, maxBatch.getAsInt() - 1);
+                        }
+                        out.writeInt(batch.size());
+                        for (RelayMessage message : batch) {
+                            out.writeUTF(message.origin);
+                            out.writeLong(message.epoch);
+                            out.writeLong(message.seq);
+                            out.writeInt(message.data.length);
+                            out.write(message.data);
+                        }
+                        out.flush();
+                        batch.clear();
+                    }
+                } catch (IOException e) {
+                    log("relay link to " + this + " failed: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    Thread.sleep(reconnectDelay.getAsLong());
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+}
@@ -2,37 +2,175 @@ package network.util;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class AppProperties {
-    Properties properties = new Properties();
-    FileInputStream in = new FileInputStream("my.properties");
+/**
+ * Immutable snapshot of my.properties, parsed once when loaded.
+ *
+ * The current snapshot is shared by the whole application and is replaced
+ * by {@link ConfigWatcher} when the file changes. Tunables (buffer size,
+ * relay batching and reconnect delay) are read from {@link #get()} on each use and
+ * take effect without a restart. Addresses, ports, server type and database
+ * settings are only read at startup.
+ */
+public final class AppProperties {
+    public static final Path FILE = Path.of("my.properties");
+    private static final AtomicReference<AppProperties> current = new AtomicReference<>();
 
-    public AppProperties() throws IOException {
-        properties.load(in);
+    private final String urlForSQL;
+    private final String SQLUsername;
+    private final String SQLPass;
+    private final String serverType;
+    private final String hostname;
+    private final int port;
+    private final String nodeId;
+    private final Integer relayPort;
+    private final List<InetSocketAddress> relayPeers;
+    private final int readBufferSize;
+    private final int relayMaxBatch;
+    private final long relayReconnectDelay;
+
+    private AppProperties(Properties properties) {
+        urlForSQL = properties.getProperty("urlForSQl");
+        SQLUsername = properties.getProperty("SQLUsername");
+        SQLPass = properties.getProperty("SQLPass");
+        serverType = properties.getProperty("serverType");
+        hostname = properties.getProperty("hostname");
+        port = Integer.parseInt(properties.getProperty("port").trim());
+        String relayPortValue = properties.getProperty("relayPort", "");
+        relayPort = relayPortValue.isBlank() ? null : Integer.valueOf(relayPortValue.trim());
+        // Loops and duplicates are detected by the node id, it must be unique in the relay mesh.
+        nodeId = properties.getProperty("nodeId", "").trim();
+        if (relayPort != null && nodeId.isEmpty())
+            throw new IllegalArgumentException("nodeId is required when relayPort is set");
+        relayPeers = parsePeers(properties.getProperty("relayPeers", ""));
+        readBufferSize = atLeast(properties, "readBufferSize", 1024, 1);
+        relayMaxBatch = atLeast(properties, "relayMaxBatch", 64, 1);
+        relayReconnectDelay = atLeast(properties, "relayReconnectDelay", 1000, 0);
+    }
+
+    // A tunable out of range rejects the whole snapshot, the previous one stays in use.
+    private static int atLeast(Properties properties, String name, int defaultValue, int min) {
+        String value = properties.getProperty(name);
+        int result = value == null ? defaultValue : Integer.parseInt(value.trim());
+        if (result < min) throw new IllegalArgumentException(name + " must be at least " + min + ", got " + result);
+        return result;
+    }
+
+    // Comma separated "host:port" pairs.
+    private static List<InetSocketAddress> parsePeers(String value) {
+        if (value.isBlank()) return List.of();
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (String peer : value.split(",", -1)) {
+            int colon = peer.lastIndexOf(':');
+            String host = colon < 0 ? "" : peer.substring(0, colon).trim();
+            if (host.isEmpty())
+                throw new IllegalArgumentException("relayPeers entry must be host:port, got \"" + peer.trim() + "\"");
+            int peerPort = Integer.parseInt(peer.substring(colon + 1).trim());
+            if (peerPort < 1 || peerPort > 65535)
+                throw new IllegalArgumentException("relayPeers port out of range in \"" + peer.trim() + "\"");
+            peers.add(InetSocketAddress.createUnresolved(host, peerPort));
+        }
+        return List.copyOf(peers);
+    }
+
+    /**
+     * Current snapshot, the file is loaded on the first call.
+     */
+    public static AppProperties get() {
+        AppProperties properties = current.get();
+        if (properties == null) {
+            try {
+                current.compareAndSet(null, load(FILE));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            properties = current.get();
+        }
+        return properties;
+    }
+
+    /**
+     * Loads the file again and swaps in the new snapshot.
+     * If the file cannot be read or parsed, the previous snapshot stays in use.
+     */
+    public static AppProperties reload() throws IOException {
+        return reload(FILE);
+    }
+
+    static AppProperties reload(Path file) throws IOException {
+        AppProperties properties = load(file);
+        current.set(properties);
+        return properties;
+    }
+
+    static AppProperties load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (var in = new FileInputStream(file.toFile())) {
+            properties.load(in);
+        }
+        try {
+            return new AppProperties(properties);
+        } catch (RuntimeException e) {
+            throw new IOException("invalid " + file + ": " + e, e);
+        }
     }
 
     public String getUrlForSQL() {
-        return properties.getProperty("urlForSQl");
+        return urlForSQL;
     }
 
     public String getSQLUsername() {
-        return properties.getProperty("SQLUsername");
+        return SQLUsername;
     }
 
     public String getSQLPass() {
-        return properties.getProperty("SQLPass");
+        return SQLPass;
     }
 
     public String getServerType() {
-        return properties.getProperty("serverType");
+        return serverType;
     }
 
     public String getHostname() {
-        return properties.getProperty("hostname");
+        return hostname;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // Null if the relay between server instances is disabled.
+    public Integer getRelayPort() {
+        return relayPort;
+    }
+
+    public List<InetSocketAddress> getRelayPeers() {
+        return relayPeers;
+    }
+
+    // Size of the selector server read buffer, bytes.
+    public int getReadBufferSize() {
+        return readBufferSize;
+    }
+
+    // Maximum number of messages sent to a peer in one batch.
+    public int getRelayMaxBatch() {
+        return relayMaxBatch;
     }
 
-    public Integer getPort() {
-        return Integer.valueOf(properties.getProperty("port"));
+    // Pause before reconnecting a broken relay link, ms.
+    public long getRelayReconnectDelay() {
+        return relayReconnectDelay;
     }
 }
@@ -0,0 +1,61 @@
+package network.util;
+
+import java.io.IOException;
+import java.nio.file.*;
+
+import static network.util.Logger.log;
+
+/**
+ * Watches my.properties and swaps in a new {@link AppProperties}
+ * snapshot every time the file changes.
+ * A broken file is reported and the previous snapshot stays in use.
+ */
+public class ConfigWatcher extends Thread {
+    // Editors often write a file in several steps, wait for them to finish.
+    private static final long SETTLE_DELAY = 100;
+    private final Path file;
+    private final WatchService watchService;
+
+    public ConfigWatcher() throws IOException {
+        this(AppProperties.FILE);
+    }
+
+    // The directory is registered here, changes made right after construction are not missed.
+    ConfigWatcher(Path file) throws IOException {
+        super("config-watcher");
+        this.file = file.toAbsolutePath();
+        watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        try (watchService) {
+            while (true) {
+                WatchKey key = watchService.take();
+                Thread.sleep(SETTLE_DELAY);
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (file.getFileName().equals(event.context())) changed = true;
+                }
+                key.reset();
+                if (changed) reload();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            log(" Config watcher stopped");
+        }
+    }
+
+    private void reload() {
+        try {
+            AppProperties.reload(file);
+            log(" Configuration reloaded from " + file);
+        } catch (IOException e) {
+            log(" Configuration not reloaded: " + e.getMessage());
+        }
+    }
+}
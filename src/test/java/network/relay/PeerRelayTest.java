@@ -0,0 +1,233 @@
+package network.relay;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Several relays on loopback ports.
+ */
+public class PeerRelayTest {
+    private static final String HOST = "localhost";
+    private static final long TIMEOUT = 5000;
+    private static final long QUIET = 500;
+    private static final int MAX_BATCH = 64;
+    private static final long RECONNECT_DELAY = 100;
+
+    private final List<PeerRelay> relays = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (PeerRelay relay : relays) {
+            relay.close();
+        }
+    }
+
+    @Test
+    public void messageReachesAllPeersButNotOrigin() throws Exception {
+        int[] ports = {freePort(), freePort(), freePort()};
+        List<BlockingQueue<String>> received = new ArrayList<>();
+        List<PeerRelay> mesh = new ArrayList<>();
+        for (int i = 0; i < ports.length; i++) {
+            List<InetSocketAddress> peers = new ArrayList<>();
+            for (int j = 0; j < ports.length; j++) {
+                if (j != i) peers.add(peer(HOST, ports[j]));
+            }
+            BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+            received.add(queue);
+            mesh.add(start("node-" + i, ports[i], peers, queue));
+        }
+
+        mesh.get(0).publish("hello");
+
+        assertEquals("hello", received.get(1).poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals("hello", received.get(2).poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertNull(received.get(0).poll(QUIET, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void ownMessagesAreDropped() throws Exception {
+        int port = freePort();
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        start("node-b", port, List.of(peer(HOST, freePort())), received);
+
+        try (var socket = new Socket(HOST, port); var out = new DataOutputStream(socket.getOutputStream())) {
+            out.writeInt(2);
+            writeMessage(out, "node-b", 1, 1, "echo");
+            writeMessage(out, "node-a", 1, 1, "hello");
+            out.flush();
+
+            assertEquals("hello", received.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+            assertNull(received.poll(QUIET, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void batchResentAfterReconnectIsDeliveredOnce() throws Exception {
+        int port = freePort();
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        start("node-b", port, List.of(peer(HOST, freePort())), received);
+
+        try (var socket = new Socket(HOST, port); var out = new DataOutputStream(socket.getOutputStream())) {
+            out.writeInt(2);
+            writeMessage(out, "node-a", 1, 1, "first");
+            writeMessage(out, "node-a", 1, 2, "second");
+            out.flush();
+            assertEquals("first", received.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+            assertEquals("second", received.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        }
+        try (var socket = new Socket(HOST, port); var out = new DataOutputStream(socket.getOutputStream())) {
+            out.writeInt(3);
+            writeMessage(out, "node-a", 1, 1, "first");
+            writeMessage(out, "node-a", 1, 2, "second");
+            writeMessage(out, "node-a", 1, 3, "third");
+            out.flush();
+            assertEquals("third", received.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+            assertNull(received.poll(QUIET, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void restartedPeerIsDelivered() throws Exception {
+        int portA = freePort();
+        int portB = freePort();
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        start("node-b", portB, List.of(peer(HOST, portA)), received);
+
+        PeerRelay relayA = start("node-a", portA, List.of(peer(HOST, portB)), new LinkedBlockingQueue<>());
+        for (int i = 0; i < 5; i++) {
+            relayA.publish("first-" + i);
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals("first-" + i, received.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        }
+        relayA.close();
+        relays.remove(relayA);
+
+        PeerRelay restartedA = start("node-a", portA, List.of(peer(HOST, portB)), new LinkedBlockingQueue<>());
+        for (int i = 0; i < 3; i++) {
+            restartedA.publish("after-restart-" + i);
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals("after-restart-" + i, received.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void concurrentPublishersLoseNothing() throws Exception {
+        int portA = freePort();
+        int portB = freePort();
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        start("node-b", portB, List.of(peer(HOST, portA)), received);
+        PeerRelay relayA = start("node-a", portA, List.of(peer(HOST, portB)), new LinkedBlockingQueue<>());
+
+        int threads = 8;
+        int messages = 400;
+        List<Thread> publishers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread publisher = new Thread(() -> {
+                for (int i = 0; i < messages; i++) {
+                    relayA.publish(id + "-" + i);
+                }
+            });
+            publishers.add(publisher);
+            publisher.start();
+        }
+        for (Thread publisher : publishers) {
+            publisher.join();
+        }
+
+        Set<String> delivered = new HashSet<>();
+        String text;
+        while ((text = received.poll(TIMEOUT, TimeUnit.MILLISECONDS)) != null) {
+            delivered.add(text);
+            if (delivered.size() == threads * messages) break;
+        }
+        assertEquals(threads * messages, delivered.size());
+    }
+
+    @Test
+    public void tooLongMessageClosesLink() throws Exception {
+        int port = freePort();
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        start("node-b", port, List.of(peer(HOST, freePort())), received);
+
+        try (var socket = new Socket(HOST, port); var out = new DataOutputStream(socket.getOutputStream())) {
+            out.writeInt(1);
+            out.writeUTF("node-a");
+            out.writeLong(1);
+            out.writeLong(1);
+            out.writeInt(Integer.MAX_VALUE);
+            out.flush();
+            socket.setSoTimeout((int) TIMEOUT);
+
+            assertEquals(-1, socket.getInputStream().read());
+            assertNull(received.poll(QUIET, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void connectionFromUnknownHostIsRejected() throws Exception {
+        int port = freePort();
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        // 192.0.2.0/24 is reserved for documentation and never routed.
+        start("node-b", port, List.of(peer("192.0.2.1", freePort())), received);
+
+        try (var socket = new Socket(HOST, port); var out = new DataOutputStream(socket.getOutputStream())) {
+            socket.setSoTimeout((int) TIMEOUT);
+            assertEquals(-1, socket.getInputStream().read());
+            try {
+                out.writeInt(1);
+                writeMessage(out, "node-a", 1, 1, "spam");
+                out.flush();
+            } catch (IOException ignored) {
+                // The relay has already closed the connection.
+            }
+            assertNull(received.poll(QUIET, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private PeerRelay start(String nodeId, int port, List<InetSocketAddress> peers, BlockingQueue<String> received)
+            throws IOException {
+        PeerRelay relay = new PeerRelay(nodeId, HOST, port, peers, () -> MAX_BATCH, () -> RECONNECT_DELAY, received::add);
+        relay.start();
+        relays.add(relay);
+        return relay;
+    }
+
+    private static void writeMessage(DataOutputStream out, String origin, long epoch, long seq, String text)
+            throws IOException {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        out.writeUTF(origin);
+        out.writeLong(epoch);
+        out.writeLong(seq);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static InetSocketAddress peer(String host, int port) {
+        return InetSocketAddress.createUnresolved(host, port);
+    }
+
+    private static int freePort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package network.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Loading, validation and reloading of the configuration from a temporary file.
+ */
+public class AppPropertiesTest {
+    private static final String BASE = "serverType=selector server\nhostname=localhost\nport=9753\n";
+    private static final long TIMEOUT = 5000;
+
+    private Path dir;
+    private Path file;
+    private ConfigWatcher watcher;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("config");
+        file = dir.resolve("my.properties");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher.join(TIMEOUT);
+        }
+        try (var files = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void loadsValuesAndDefaults() throws IOException {
+        AppProperties properties = load(BASE);
+
+        assertEquals("selector server", properties.getServerType());
+        assertEquals(9753, properties.getPort());
+        assertNull(properties.getRelayPort());
+        assertEquals(List.of(), properties.getRelayPeers());
+        assertEquals(1024, properties.getReadBufferSize());
+        assertEquals(64, properties.getRelayMaxBatch());
+        assertEquals(1000, properties.getRelayReconnectDelay());
+    }
+
+    @Test
+    public void parsesRelaySettings() throws IOException {
+        AppProperties properties = load(BASE + "nodeId=node-1\nrelayPort=9853\nrelayPeers=localhost:9854, box-2:9855\n");
+
+        assertEquals("node-1", properties.getNodeId());
+        assertEquals(Integer.valueOf(9853), properties.getRelayPort());
+        assertEquals(List.of(InetSocketAddress.createUnresolved("localhost", 9854),
+                InetSocketAddress.createUnresolved("box-2", 9855)), properties.getRelayPeers());
+    }
+
+    @Test
+    public void missingNodeIdIsRejectedWhenRelayIsEnabled() throws IOException {
+        assertInvalid(BASE + "relayPort=9853\n");
+        assertInvalid(BASE + "relayPort=9853\nnodeId= \n");
+    }
+
+    @Test
+    public void outOfRangeTunablesAreRejected() throws IOException {
+        assertInvalid(BASE + "readBufferSize=0\n");
+        assertInvalid(BASE + "relayMaxBatch=0\n");
+        assertInvalid(BASE + "relayReconnectDelay=-1\n");
+        assertInvalid(BASE + "readBufferSize=big\n");
+    }
+
+    @Test
+    public void invalidRelayPeersAreRejected() throws IOException {
+        assertInvalid(BASE + "relayPeers=localhost\n");
+        assertInvalid(BASE + "relayPeers=a:1,,b:2\n");
+        assertInvalid(BASE + "relayPeers=:9854\n");
+        assertInvalid(BASE + "relayPeers=localhost:port\n");
+        assertInvalid(BASE + "relayPeers=localhost:70000\n");
+    }
+
+    @Test
+    public void reloadSwapsInNewValues() throws IOException {
+        write(BASE);
+        AppProperties.reload(file);
+        assertEquals(1024, AppProperties.get().getReadBufferSize());
+
+        write(BASE + "readBufferSize=2048\n");
+        AppProperties.reload(file);
+        assertEquals(2048, AppProperties.get().getReadBufferSize());
+    }
+
+    @Test
+    public void failedReloadKeepsPreviousSnapshot() throws IOException {
+        write(BASE + "readBufferSize=2048\n");
+        AppProperties previous = AppProperties.reload(file);
+
+        write(BASE + "readBufferSize=0\n");
+        try {
+            AppProperties.reload(file);
+            fail("reload of an invalid file succeeded");
+        } catch (IOException expected) {
+            // The previous snapshot stays in use.
+        }
+        assertSame(previous, AppProperties.get());
+    }
+
+    @Test
+    public void watcherPicksUpWrittenAndReplacedFile() throws Exception {
+        write(BASE);
+        AppProperties.reload(file);
+        watcher = new ConfigWatcher(file);
+        watcher.start();
+
+        write(BASE + "readBufferSize=0\n");
+        write(BASE + "readBufferSize=2048\n");
+        assertEventually(2048);
+
+        // Editors often save by writing a new file and renaming it over the old one.
+        Path replacement = dir.resolve("my.properties.tmp");
+        Files.writeString(replacement, BASE + "readBufferSize=4096\n");
+        Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        assertEventually(4096);
+    }
+
+    private AppProperties load(String content) throws IOException {
+        write(content);
+        return AppProperties.load(file);
+    }
+
+    private void assertInvalid(String content) throws IOException {
+        write(content);
+        try {
+            AppProperties.load(file);
+            fail("loaded an invalid file: " + content);
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("invalid "));
+        }
+    }
+
+    private void assertEventually(int readBufferSize) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (AppProperties.get().getReadBufferSize() != readBufferSize && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(readBufferSize, AppProperties.get().getReadBufferSize());
+    }
+
+    private void write(String content) throws IOException {
+        Files.writeString(file, content);
+    }
+}